@@ -44,6 +44,7 @@ public class Calculate
 	 System.out.println("\nSimplified: " + simple);
 	 
 	 Set<String> variables = expr.getVariables();
+	 MemoizedExpression memo = new MemoizedExpression(expr, 256);
 	 HashMap<String, Integer> assignment = new HashMap<String, Integer>();
 	 boolean anotherAssignment = true;
 	 while(variables.size() > 0 && anotherAssignment)
@@ -57,7 +58,7 @@ public class Calculate
 	    }	  
 	    assignment.put("not_yet_implemented", 0);
 	    
-	    System.out.println("\nThe expression evaluates to: " + expr.evaluate(assignment));
+	    System.out.println("\nThe expression evaluates to: " + memo.evaluate(assignment));
 	    System.out.println("The simplified expression evaluates to: " + simple.evaluate(assignment));
 	    System.out.print("Would you like to reassign the variables (y/n)? ");
 	    String answer = userIn.next();
@@ -0,0 +1,223 @@
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class that writes an expression tree in DOT format for visualization.
+ * Nodes are numbered in breadth first order, an operator node shared by several parents is written once,
+ * and subtrees below the depth or node count limits are collapsed into a single summary node.
+ */
+public class DotExporter
+{
+   private static final int BUFFER_SIZE = 1 << 16;
+
+   private final int maxDepth;
+   private final int maxNodes;
+
+   /**
+    * Create an exporter that writes every node
+    */
+   public DotExporter()
+   {
+      this(Integer.MAX_VALUE, Integer.MAX_VALUE);
+   }
+
+   /**
+    * Create an exporter that collapses large trees
+    * @param maxDepth the deepest level whose operators are expanded; the root is at depth 0
+    * @param maxNodes the number of operators to expand before collapsing the remaining subtrees
+    */
+   public DotExporter(int maxDepth, int maxNodes)
+   {
+      if(maxDepth < 0 || maxNodes < 1)
+        throw new IllegalArgumentException("maxDepth must be at least 0 and maxNodes at least 1");
+      this.maxDepth = maxDepth;
+      this.maxNodes = maxNodes;
+   }
+
+   /**
+    * Writes the expression to a file in DOT format
+    * @param expr the Expression to write
+    * @param filename the name of the output file
+    */
+   public void export(Expression expr, String filename) throws IOException
+   {
+      FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      try{
+        new Run(channel).write(expr);
+      }finally{
+        channel.close();
+      }
+   }
+
+   /**
+    * A class holding the state of writing one expression
+    */
+   private class Run
+   {
+      private final FileChannel channel;
+      private final StringBuilder out = new StringBuilder(BUFFER_SIZE + 256);
+      private final IdentityHashMap<Expression, Integer> ids = new IdentityHashMap<Expression, Integer>();//operator nodes already written
+      private final IdentityHashMap<Expression, Long> sizes = new IdentityHashMap<Expression, Long>();//sizes of collapsed operators and their subtrees
+      private int expanded = 0;
+      private int nextID = 0;
+
+      /**
+       * Create the run
+       * @param channel the FileChannel to write to
+       */
+      Run(FileChannel channel)
+      {
+         this.channel = channel;
+      }
+
+      /**
+       * Writes the whole graph, visiting the nodes level by level so the limits cut off the deepest parts first
+       * @param root the Expression at the root of the tree
+       */
+      void write(Expression root) throws IOException
+      {
+         out.append("graph Expression {\n");
+         ArrayDeque<Expression> queue = new ArrayDeque<Expression>();
+         ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+         if(writeNode(root, 0)){
+           queue.add(root);
+           depths.add(0);
+         }
+         while(!queue.isEmpty()){
+           Expression curr = queue.poll();
+           int depth = depths.poll();
+           int id = ids.get(curr);
+           for(int i = 0; i < curr.childCount(); i++){
+             Expression child = curr.child(i);
+             Integer childID = ids.get(child);
+             if(childID == null){
+               childID = nextID;
+               if(writeNode(child, depth + 1)){
+                 queue.add(child);
+                 depths.add(depth + 1);
+               }
+             }
+             out.append("\tnode").append(id).append(" -- node").append(childID).append(";\n");
+           }
+           flushIfFull();
+         }
+         out.append("}\n");
+         flush();
+      }
+
+      /**
+       * Gives a node the next ID and writes its vertex, collapsing it if it is past a limit
+       * @param expr the Expression to write
+       * @param depth the depth of expr in the tree
+       * @return true if expr is an expanded operator whose children still need to be written
+       */
+      private boolean writeNode(Expression expr, int depth)
+      {
+         int id = nextID++;
+         out.append("\tnode").append(id);
+         if(expr.childCount() == 0){//leaves are drawn once per occurrence, even when a cached constant is reused
+           out.append("[label=\"");
+           appendEscaped(expr.nodeLabel());
+           out.append("\"];\n");
+           return false;
+         }
+         ids.put(expr, id);
+         if(depth > maxDepth || expanded >= maxNodes){
+           out.append("[shape=box,style=dashed,label=\"");
+           appendEscaped(expr.nodeLabel());
+           out.append(" ... (").append(subtreeSize(expr)).append(" nodes)\"];\n");
+           return false;
+         }
+         expanded++;
+         out.append("[label=\"");
+         appendEscaped(expr.nodeLabel());
+         out.append("\"];\n");
+         return true;
+      }
+
+      /**
+       * Counts the nodes of a subtree without recursion, counting a shared node once for each parent as the tree would
+       * @param root the operator Expression at the top of the subtree
+       * @return the number of nodes in the subtree
+       */
+      private long subtreeSize(Expression root)
+      {
+         ArrayDeque<Expression> stack = new ArrayDeque<Expression>();
+         stack.push(root);
+         while(!stack.isEmpty()){
+           Expression curr = stack.peek();
+           if(sizes.containsKey(curr)){
+             stack.pop();
+             continue;
+           }
+           long size = 1;
+           boolean counted = true;
+           for(int i = 0; i < curr.childCount(); i++){
+             Long childSize = knownSize(curr.child(i));
+             if(childSize == null){//count the children first
+               stack.push(curr.child(i));
+               counted = false;
+             }
+             else
+               size += childSize;
+           }
+           if(counted){
+             sizes.put(curr, size);
+             stack.pop();
+           }
+         }
+         return sizes.get(root);
+      }
+
+      /**
+       * @param expr an Expression
+       * @return the size of expr's subtree if it is a leaf or already counted, otherwise null
+       */
+      private Long knownSize(Expression expr)
+      {
+         if(expr.childCount() == 0)
+           return 1L;
+         return sizes.get(expr);
+      }
+
+      /**
+       * Appends a label, escaping the characters DOT treats specially inside quotes
+       * @param label the String to append
+       */
+      private void appendEscaped(String label)
+      {
+         for(int i = 0; i < label.length(); i++){
+           char c = label.charAt(i);
+           if(c == '"' || c == '\\')
+             out.append('\\');
+           out.append(c);
+         }
+      }
+
+      /**
+       * Writes the buffered text to the channel once it has grown past the buffer size
+       */
+      private void flushIfFull() throws IOException
+      {
+         if(out.length() >= BUFFER_SIZE)
+           flush();
+      }
+
+      /**
+       * Writes all buffered text to the channel
+       */
+      private void flush() throws IOException
+      {
+         ByteBuffer bytes = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+         while(bytes.hasRemaining())
+           channel.write(bytes);
+         out.setLength(0);
+      }
+   }
+}
@@ -36,6 +36,11 @@ public abstract class Expression
     * @return a boolean telling if this string is a number 
     */
    private static boolean isInteger(String x){
+        if(x.isEmpty())
+          return false;
+        char first = x.charAt(0);
+        if(first != '-' && first != '+' && (first < '0' || first > '9'))//skip the exception for plain variable names
+          return false;
         try{
           Integer.parseInt(x);
           return true;
@@ -72,69 +77,95 @@ public abstract class Expression
     */    
    private static Operand buildOperand(String curr){
     if(isInteger(curr)){
-      return new IntegerOperand(Integer.parseInt(curr));}
+      return IntegerOperand.valueOf(Integer.parseInt(curr));}
     return new VariableOperand(curr);
     }
 
+   /**
+    * Binding strength of each operator token; "(" binds loosest so it is never reduced by an operator
+    */
+   private static final HashMap<String, Integer> ORDER = new HashMap<String, Integer>();
+   static {
+      ORDER.put("(",0);
+      ORDER.put("+",1);
+      ORDER.put("-",1);
+      ORDER.put("*",2);
+      ORDER.put("/",2);
+   }
+
    /**
     * Creates a tree from an expression in infix notation
     * @param infix an array of Strings representing a infix arithmetic expression
     * @return a new Expression that represents infix
+    * @throws IllegalArgumentException if infix is not a well formed expression; the message names the offending token position
     */
    public static Expression expressionFromInfix(String[] infix)
    {
-      HashMap<String, Integer> order= new HashMap<String, Integer>();//build a hashmap of operator orders 
-      order.put("(",1);
-      order.put(")",1);
-      order.put("+",2);
-      order.put("-",2);
-      order.put("*",3);
-      order.put("/",3);
-      //build two stacks that one to hold operators and another to hold operands and new Expression operands(build from operators)
-      Stack<String> operator = new Stack<String>();
-      Stack<Expression> operands = new Stack<Expression>();
+      //neither stack can hold more entries than there are tokens
+      Expression[] operands = new Expression[infix.length];
+      String[] operators = new String[infix.length];
+      int[] opened = new int[infix.length];//token position of each operator, used to report an unmatched "("
+      int nOperands = 0;
+      int nOperators = 0;
+      boolean expectOperand = true;//true before a term starts, false right after one ends
       for(int i = 0; i < infix.length; i++){
         String curr = infix[i];
-        if(curr.equals("+")||curr.equals("-")||curr.equals("*")||curr.equals("/")||curr.equals("(")||curr.equals(")")){//if the current one is a operator
-          if(operator.empty() || curr.equals("(") || (operator.peek().equals("("))){//operator stack is empty
-            operator.push(curr);
-          }
-          else if(order.get(curr) > order.get(operator.peek())){
-            //current operator has a higher order than the previous one
-            Expression left = operands.pop();
-            String next = infix[i + 1];
-            while(next.equals("(")){//in case two or more parentheses are next to each other
-              i++;
-              next = infix[i + 1];
-              operator.push("(");
-            }
-            operands.push(buildOperator(curr,left,buildOperand(next)));
-            i++;
-          }
-          else if(curr.equals(")")){//")"; need to pop all stuffs between parentheses 
-            if(!operator.peek().equals("(")){//in case there's no operator between parentheses
-              while(!operator.peek().equals("(")){
-                Expression right = operands.pop();
-                operands.push(buildOperator(operator.pop(),operands.pop(),right));
-            }}operator.pop();//pop("(")
+        if(curr.equals("(")){
+          if(!expectOperand)
+            throw infixError("unexpected \"(\"", i);
+          opened[nOperators] = i;
+          operators[nOperators++] = curr;
+        }
+        else if(curr.equals(")")){
+          if(expectOperand)
+            throw infixError("unexpected \")\"", i);
+          while(nOperators > 0 && !operators[nOperators - 1].equals("(")){//build everything back to the matching "("
+            Expression right = operands[--nOperands];
+            operands[nOperands - 1] = buildOperator(operators[--nOperators], operands[nOperands - 1], right);
           }
-          else{//the next operator has a lower or equal order than the previous one           
-            Expression right = operands.pop(); 
-            operands.push(buildOperator(operator.pop(),operands.pop(),right));
-            operator.push(curr);  
+          if(nOperators == 0)
+            throw infixError("unmatched \")\"", i);
+          nOperators--;//pop("(")
+        }
+        else if(ORDER.containsKey(curr)){//a binary operator
+          if(expectOperand)
+            throw infixError("missing operand before \"" + curr + "\"", i);
+          int order = ORDER.get(curr);
+          while(nOperators > 0 && ORDER.get(operators[nOperators - 1]) >= order){//left associative: build equal or higher orders first
+            Expression right = operands[--nOperands];
+            operands[nOperands - 1] = buildOperator(operators[--nOperators], operands[nOperands - 1], right);
           }
+          opened[nOperators] = i;
+          operators[nOperators++] = curr;
+          expectOperand = true;
+        }
+        else{//an operand
+          if(!expectOperand)
+            throw infixError("missing operator before \"" + curr + "\"", i);
+          operands[nOperands++] = buildOperand(curr);
+          expectOperand = false;
         }
-
-       else{//push the item to the operand if it is not an operator
-        operands.push(buildOperand(curr));
       }
-    }
-   while(!operator.empty()){//build all the rest operators to expressions 
-      Expression right = operands.pop(); 
-      operands.push(buildOperator(operator.pop(),operands.pop(),right));
+      if(expectOperand)
+        throw infixError("missing operand at end of expression", infix.length);
+      while(nOperators > 0){//build all the rest operators to expressions
+        if(operators[nOperators - 1].equals("("))
+          throw infixError("unmatched \"(\"", opened[nOperators - 1]);
+        Expression right = operands[--nOperands];
+        operands[nOperands - 1] = buildOperator(operators[--nOperators], operands[nOperands - 1], right);
+      }
+      return operands[0];
    }
-    return operands.pop();//pop the last item in the operand stack
-  }
+
+   /**
+    * Creates a helper method to build the exception for a malformed infix expression
+    * @param message a String describing the problem
+    * @param position the index of the offending token
+    * @return an IllegalArgumentException to be thrown
+    */
+   private static IllegalArgumentException infixError(String message, int position){
+        return new IllegalArgumentException(message + " at token " + position);
+    }
 
 
 
@@ -154,6 +185,11 @@ public abstract class Expression
     */  
    public abstract String toPostfix();
 
+   /**
+    * @return a String in prefix notation that is the same for expressions that differ only in the order of the operands of + and *
+    */
+   public abstract String toCanonical();
+
    /**
     * @return a String that represents the expression in infix notation
     */
@@ -183,31 +219,72 @@ public abstract class Expression
    @Override
    public abstract boolean equals(Object obj);
 
+   /**
+    * Replaces every occurrence of a variable without modifying this expression.
+    * Only the nodes on a path to an occurrence are copied; every other subtree is shared with this expression.
+    * @param var the name of the variable to replace
+    * @param expr the Expression to put in place of each occurrence of var
+    * @return a new Expression with var replaced by expr, or this expression if var does not occur in it
+    */
+   public abstract Expression substitute(String var, Expression expr);
+
+   /**
+    * Replaces the subtree at the end of a path without modifying this expression.
+    * Only the nodes along the path are copied; every other subtree is shared with this expression.
+    * @param path a String of 'L' and 'R' characters choosing the left or right child at each step from the root; "" is the root itself
+    * @param expr the Expression to put at the end of path
+    * @return a new Expression with the subtree at path replaced by expr
+    * @throws IllegalArgumentException if path contains another character or runs past a leaf
+    */
+   public Expression replaceAt(String path, Expression expr)
+   {
+      return replaceAtHelper(path, 0, expr);
+   }
+
+   /**
+    * Recursively copies the nodes along a path and puts a new subtree at its end
+    * @param path a String of 'L' and 'R' characters
+    * @param step the index in path of the child to choose from this node
+    * @param expr the Expression to put at the end of path
+    * @return a new Expression with the rest of path replaced below this node
+    */
+   protected abstract Expression replaceAtHelper(String path, int step, Expression expr);
+
+   /**
+    * @return the text drawn for this node: an operator, a variable name or a value
+    */
+   abstract String nodeLabel();
+
+   /**
+    * @return the number of operands this node has; 0 for a leaf
+    */
+   abstract int childCount();
+
+   /**
+    * @param i the index of the operand, from 0 to childCount() - 1
+    * @return the i-th operand of this node
+    */
+   abstract Expression child(int i);
+
    /**
     * Prints the expression as a tree in DOT format for visualization
     * @param filename the name of the output file
     */
    public void drawExpression(String filename) throws IOException
    {
-      BufferedWriter bw = null;
-      FileWriter fw = new FileWriter(filename);
-      bw = new BufferedWriter(fw);
-      
-      bw.write("graph Expression {\n");
-      
-      drawExprHelper(bw);
-      
-      bw.write("}\n");
-      
-      bw.close();
-      fw.close();     
+      new DotExporter().export(this, filename);
    }
 
    /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
+    * Prints the expression as a tree in DOT format for visualization, collapsing the parts past the limits into summary nodes
+    * @param filename the name of the output file
+    * @param maxDepth the deepest level whose operators are expanded; the root is at depth 0
+    * @param maxNodes the number of operators to expand before collapsing the remaining subtrees
     */
-   protected abstract void drawExprHelper(BufferedWriter bw) throws IOException;
+   public void drawExpression(String filename, int maxDepth, int maxNodes) throws IOException
+   {
+      new DotExporter(maxDepth, maxNodes).export(this, filename);
+   }
 
 
 }
@@ -217,13 +294,42 @@ public abstract class Expression
  */
 abstract class Operand extends Expression
 {
-  protected String item;//add a common instance variable for both integer&variable
+  /**
+   * @return a String that represents the value or name of this operand
+   */
+  protected abstract String getItem();
+
+  /**
+   * @return the text drawn for this node
+   */
+  String nodeLabel()
+  {
+     return getItem();
+  }
+
+  /**
+   * @return 0, since an operand is a leaf
+   */
+  int childCount()
+  {
+     return 0;
+  }
+
+  /**
+   * @param i the index of the operand
+   * @return never; an operand has no operands
+   */
+  Expression child(int i)
+  {
+     throw new IndexOutOfBoundsException("an operand has no child " + i);
+  }
+
   /**
   * @return a String that represents this expression in prefix notation.
   */   
   public String toPrefix()
    {
-      return " " + item;
+      return " " + getItem();
    }
 
    /**
@@ -231,7 +337,7 @@ abstract class Operand extends Expression
     */  
    public String toPostfix()
    {
-      return " " + item;
+      return " " + getItem();
    }   
 
    /**
@@ -239,7 +345,15 @@ abstract class Operand extends Expression
     */
    public String toInfix()
    {
-      return  item;     
+      return  getItem();     
+   }
+
+   /**
+    * @return a String in prefix notation that is the same for expressions that differ only in the order of the operands of + and *
+    */
+   public String toCanonical()
+   {
+      return toPrefix();
    }
 
    /**
@@ -251,6 +365,20 @@ abstract class Operand extends Expression
       return this;
    }   
 
+   /**
+    * Recursively copies the nodes along a path and puts a new subtree at its end
+    * @param path a String of 'L' and 'R' characters
+    * @param step the index in path of the child to choose from this node
+    * @param expr the Expression to put at the end of path
+    * @return expr if the path ends at this operand
+    */
+   protected Expression replaceAtHelper(String path, int step, Expression expr)
+   {
+      if(step == path.length())
+        return expr;
+      throw new IllegalArgumentException("path \"" + path + "\" runs past the leaf " + getItem() + " at step " + step);
+   }
+
     /**
     * @param obj and Object to compare to
     * @return true if obj is an IntegerOperand with the same associated value
@@ -267,18 +395,65 @@ abstract class Operand extends Expression
         return false;
 
       Operand exp2 = (Operand) obj;//build a new object to check the instance variables 
-      if (item.equals(exp2.item))
+      if (getItem().equals(exp2.getItem()))
         return true;
       return false;
    }   
 
-    /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
+   /**
+    * @return a hash code based on the text of this operand, so that operands equal by text hash alike
     */
-   protected void drawExprHelper(BufferedWriter bw) throws IOException
+   @Override
+   public int hashCode()
    {
-      bw.write("\tnode"+hashCode()+"[label="+item+"];\n");
+      return getItem().hashCode();
+   }
+
+   /**
+    * Creates a helper method to compare a name with the decimal text of an integer without building that text
+    * @param text the String to compare
+    * @param value the integer whose decimal text is compared
+    * @return true if text equals Integer.toString(value)
+    */
+   protected static boolean isDecimalText(String text, int value)
+   {
+      long rest = value;//a long so that -Integer.MIN_VALUE fits
+      int i = 0;
+      if(rest < 0){
+        if(text.isEmpty() || text.charAt(0) != '-')
+          return false;
+        rest = -rest;
+        i = 1;
+      }
+      long place = 1;
+      while(place * 10 <= rest)
+        place *= 10;
+      for(; place > 0; place /= 10, i++){
+        if(i >= text.length() || text.charAt(i) != (char) ('0' + rest / place % 10))
+          return false;
+      }
+      return i == text.length();
+   }
+
+   /**
+    * Creates a helper method to hash the decimal text of an integer without building that text
+    * @param value the integer to hash
+    * @return the same value as Integer.toString(value).hashCode()
+    */
+   protected static int decimalHash(int value)
+   {
+      long rest = value;
+      int hash = 0;
+      if(rest < 0){
+        hash = '-';
+        rest = -rest;
+      }
+      long place = 1;
+      while(place * 10 <= rest)
+        place *= 10;
+      for(; place > 0; place /= 10)
+        hash = 31 * hash + (char) ('0' + rest / place % 10);
+      return hash;
    }
 }
 
@@ -287,7 +462,18 @@ abstract class Operand extends Expression
  */
 class IntegerOperand extends Operand
 {
-   protected int operand;
+   private static final int CACHE_LOW = -128;
+   private static final int CACHE_HIGH = 1024;
+   private static final IntegerOperand[] CACHE = new IntegerOperand[CACHE_HIGH - CACHE_LOW + 1];//shared leaves for the common small constants
+   static {
+      for(int i = 0; i < CACHE.length; i++)
+        CACHE[i] = new IntegerOperand(i + CACHE_LOW);
+   }
+
+   static final IntegerOperand ZERO = valueOf(0);
+   static final IntegerOperand ONE = valueOf(1);
+
+   protected final int operand;
 
    /**
     * Create the expression
@@ -296,7 +482,49 @@ class IntegerOperand extends Operand
    public IntegerOperand(int operand)
    {
       this.operand = operand;
-      this.item = Integer.toString(operand);
+   }
+
+   /**
+    * Returns the shared expression for a small constant, or creates a new one
+    * @param operand the integer value the expression represents
+    * @return an IntegerOperand representing operand
+    */
+   public static IntegerOperand valueOf(int operand)
+   {
+      if(operand >= CACHE_LOW && operand <= CACHE_HIGH)
+        return CACHE[operand - CACHE_LOW];
+      return new IntegerOperand(operand);
+   }
+
+   /**
+    * @return a String that represents the value of this operand, built on demand
+    */
+   protected String getItem()
+   {
+      return Integer.toString(operand);
+   }
+
+   /**
+    * @param obj and Object to compare to
+    * @return true if obj is an IntegerOperand with the same associated value
+    */
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj instanceof IntegerOperand)//compare the values directly instead of their text
+        return operand == ((IntegerOperand) obj).operand;
+      else if (obj instanceof VariableOperand)
+        return isDecimalText(((VariableOperand) obj).item, operand);
+      return false;
+   }
+
+   /**
+    * @return a hash code equal to the hash of this operand's text, computed without building it
+    */
+   @Override
+   public int hashCode()
+   {
+      return decimalHash(operand);
    }
 
    /**
@@ -317,6 +545,16 @@ class IntegerOperand extends Operand
       return operand;
    }
 
+   /**
+    * @param var the name of the variable to replace
+    * @param expr the Expression to put in place of each occurrence of var
+    * @return this expression, since it contains no variables
+    */
+   public Expression substitute(String var, Expression expr)
+   {
+      return this;
+   }
+
 }
 
 /**
@@ -324,6 +562,8 @@ class IntegerOperand extends Operand
  */
 class VariableOperand extends Operand
 {
+   protected final String item;
+
    /**
     * Create the expression
     * @param variable the variable name contained with this expression
@@ -333,6 +573,37 @@ class VariableOperand extends Operand
       this.item = variable;
    }
 
+   /**
+    * @return a String that represents the name of this operand
+    */
+   protected String getItem()
+   {
+      return item;
+   }
+
+   /**
+    * @param obj and Object to compare to
+    * @return true if obj is an operand with the same text as this variable
+    */
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (obj instanceof VariableOperand)
+        return item.equals(((VariableOperand) obj).item);
+      else if (obj instanceof IntegerOperand)//compare without building the integer's text
+        return isDecimalText(item, ((IntegerOperand) obj).operand);
+      return false;
+   }
+
+   /**
+    * @return a hash code based on the name of this variable
+    */
+   @Override
+   public int hashCode()
+   {
+      return item.hashCode();
+   }
+
    /**
     * Evaluates the expression given assignments of values to variables.
     * @param assignments a HashMap from Strings (variable names) to Integers (values).
@@ -343,6 +614,18 @@ class VariableOperand extends Operand
       return assignments.get(item);
    }
 
+   /**
+    * @param var the name of the variable to replace
+    * @param expr the Expression to put in place of each occurrence of var
+    * @return expr if this is the variable var, otherwise this expression
+    */
+   public Expression substitute(String var, Expression expr)
+   {
+      if(item.equals(var))
+        return expr;
+      return this;
+   }
+
 
    /**
     * @return a Set of the variables contained in this expression
@@ -360,8 +643,8 @@ class VariableOperand extends Operand
  */
 abstract class OperatorExpression extends Expression
 {
-   protected Expression left;
-   protected Expression right;
+   protected final Expression left;
+   protected final Expression right;
 
    /**
     * Create the expression
@@ -378,6 +661,65 @@ abstract class OperatorExpression extends Expression
     * @return a string representing the operator
     */
    protected abstract String getOperator();     
+
+   /**
+    * @return the text drawn for this node
+    */
+   String nodeLabel()
+   {
+      return getOperator();
+   }
+
+   /**
+    * @return 2, the left and right operands
+    */
+   int childCount()
+   {
+      return 2;
+   }
+
+   /**
+    * @param i 0 for the left operand or 1 for the right operand
+    * @return the i-th operand of this node
+    */
+   Expression child(int i)
+   {
+      if(i == 0)
+        return left;
+      else if(i == 1)
+        return right;
+      throw new IndexOutOfBoundsException("an operator has no child " + i);
+   }
+
+   /**
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    * @return a new expression with the same operator as this one and the given operands
+    */
+   protected abstract OperatorExpression withChildren(Expression left, Expression right);
+
+   /**
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    * @return this expression if both operands are the ones it already has, otherwise a new expression with the same operator
+    */
+   protected OperatorExpression withChildrenIfChanged(Expression left, Expression right)
+   {
+      if(left == this.left && right == this.right)
+        return this;
+      return withChildren(left, right);
+   }
+
+   /**
+    * Creates a helper method to check for a constant without building an operand to compare against
+    * @param expr the Expression to check
+    * @param value the integer value to look for
+    * @return true if expr is an IntegerOperand with the given value
+    */
+   protected static boolean isConstant(Expression expr, int value)
+   {
+      return expr instanceof IntegerOperand && ((IntegerOperand) expr).operand == value;
+   }
    
 
    /**
@@ -404,6 +746,18 @@ abstract class OperatorExpression extends Expression
       return "(" + left.toInfix()  + getOperator() + right.toInfix() + ")";        
    }
 
+   /**
+    * @return a String in prefix notation that is the same for expressions that differ only in the order of the operands of + and *
+    */
+   public String toCanonical()
+   {
+      String leftCanon = left.toCanonical();
+      String rightCanon = right.toCanonical();
+      if((getOperator().equals("*") || getOperator().equals("+")) && leftCanon.compareTo(rightCanon) > 0)//put the operands of a commutative operator in a fixed order
+        return " " + getOperator() + rightCanon + leftCanon;
+      return " " + getOperator() + leftCanon + rightCanon;
+   }
+
 
 
     /**
@@ -416,6 +770,39 @@ abstract class OperatorExpression extends Expression
       return res;
    }
 
+   /**
+    * @param var the name of the variable to replace
+    * @param expr the Expression to put in place of each occurrence of var
+    * @return a new Expression with var replaced by expr, or this expression if var does not occur in it
+    */
+   public Expression substitute(String var, Expression expr)
+   {
+      Expression leftSub = left.substitute(var, expr);
+      Expression rightSub = right.substitute(var, expr);
+      if(leftSub == left && rightSub == right)//nothing changed below, so share this whole subtree
+        return this;
+      return withChildren(leftSub, rightSub);
+   }
+
+   /**
+    * Recursively copies the nodes along a path and puts a new subtree at its end
+    * @param path a String of 'L' and 'R' characters
+    * @param step the index in path of the child to choose from this node
+    * @param expr the Expression to put at the end of path
+    * @return a new Expression with the rest of path replaced below this node
+    */
+   protected Expression replaceAtHelper(String path, int step, Expression expr)
+   {
+      if(step == path.length())
+        return expr;
+      char next = path.charAt(step);
+      if(next == 'L')
+        return withChildren(left.replaceAtHelper(path, step + 1, expr), right);
+      else if(next == 'R')
+        return withChildren(left, right.replaceAtHelper(path, step + 1, expr));
+      throw new IllegalArgumentException("path \"" + path + "\" has '" + next + "' at step " + step + "; expected 'L' or 'R'");
+   }
+
    /**
     * @param obj and Object to compare to
     * @return true if obj is an IntegerOperand with the same associated value
@@ -444,21 +831,6 @@ abstract class OperatorExpression extends Expression
       }
       return false;
    }      
-
-   /**
-    * Recursively prints the vertices and edges of the expression tree for visualization
-    * @param bw the BufferedWriter to write to
-    */
-   protected void drawExprHelper(BufferedWriter bw) throws IOException
-   {
-      String rootID = "\tnode"+hashCode();
-      bw.write(rootID+"[label=\""+getOperator()+"\"];\n");
-
-      bw.write(rootID + " -- node" + left.hashCode() + ";\n");
-      bw.write(rootID + " -- node" + right.hashCode() + ";\n");
-      left.drawExprHelper(bw);
-      right.drawExprHelper(bw);
-   }   
 }
 
 /**
@@ -484,6 +856,16 @@ class SumExpression extends OperatorExpression
       return "+";
    }
 
+   /**
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    * @return a new expression with the same operator as this one and the given operands
+    */
+   protected OperatorExpression withChildren(Expression left, Expression right)
+   {
+      return new SumExpression(left, right);
+   }
+
     /**
     * Evaluates the expression given assignments of values to variables.
     * @param assignments a HashMap from Strings (variable names) to Integers (values).
@@ -503,16 +885,16 @@ class SumExpression extends OperatorExpression
       Expression rightSimp = right.simplify();
 
       if(leftSimp instanceof IntegerOperand && rightSimp instanceof IntegerOperand) //evaluate directly if there is no variables after simplify each side
-        return new IntegerOperand(leftSimp.evaluate(null) + rightSimp.evaluate(null));
+        return IntegerOperand.valueOf(leftSimp.evaluate(null) + rightSimp.evaluate(null));
 
-      else if(leftSimp.equals(new IntegerOperand(0)))
+      else if(isConstant(leftSimp, 0))
         return rightSimp;
 
-      else if(rightSimp.equals(new IntegerOperand(0)))
+      else if(isConstant(rightSimp, 0))
         return leftSimp;
 
       else 
-        return new SumExpression(leftSimp,rightSimp); 
+        return withChildrenIfChanged(leftSimp, rightSimp); 
     }
 }
 
@@ -539,6 +921,16 @@ class DifferenceExpression extends OperatorExpression
       return "-";
    }
 
+   /**
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    * @return a new expression with the same operator as this one and the given operands
+    */
+   protected OperatorExpression withChildren(Expression left, Expression right)
+   {
+      return new DifferenceExpression(left, right);
+   }
+
     /**
     * Evaluates the expression given assignments of values to variables.
     * @param assignments a HashMap from Strings (variable names) to Integers (values).
@@ -559,17 +951,17 @@ class DifferenceExpression extends OperatorExpression
       Expression leftSimp = left.simplify();
       Expression rightSimp = right.simplify();
 
-      if(leftSimp.equals(rightSimp))
-        return new IntegerOperand(0);
+      if(leftSimp.getClass() == rightSimp.getClass() && leftSimp.equals(rightSimp))//only the same kind of node can cancel out
+        return IntegerOperand.ZERO;
 
       else if(leftSimp instanceof IntegerOperand && rightSimp instanceof IntegerOperand) 
-        return new IntegerOperand(leftSimp.evaluate(null) - rightSimp.evaluate(null));
+        return IntegerOperand.valueOf(leftSimp.evaluate(null) - rightSimp.evaluate(null));
 
-      else if(rightSimp.equals(new IntegerOperand(0)))
+      else if(isConstant(rightSimp, 0))
         return leftSimp;
 
       else 
-        return new DifferenceExpression(leftSimp,rightSimp); 
+        return withChildrenIfChanged(leftSimp, rightSimp); 
    }    
 }
 
@@ -596,6 +988,16 @@ class ProductExpression extends OperatorExpression
       return "*";
    }
 
+   /**
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    * @return a new expression with the same operator as this one and the given operands
+    */
+   protected OperatorExpression withChildren(Expression left, Expression right)
+   {
+      return new ProductExpression(left, right);
+   }
+
     /**
     * Evaluates the expression given assignments of values to variables.
     * @param assignments a HashMap from Strings (variable names) to Integers (values).
@@ -614,20 +1016,20 @@ class ProductExpression extends OperatorExpression
       Expression rightSimp = right.simplify();
 
 
-      if(leftSimp.equals(new IntegerOperand(0)) || rightSimp.equals(new IntegerOperand(0)))
-        return new IntegerOperand(0);
+      if(isConstant(leftSimp, 0) || isConstant(rightSimp, 0))
+        return IntegerOperand.ZERO;
 
       else if(leftSimp instanceof IntegerOperand && rightSimp instanceof IntegerOperand) 
-        return new IntegerOperand(leftSimp.evaluate(null) * rightSimp.evaluate(null));
+        return IntegerOperand.valueOf(leftSimp.evaluate(null) * rightSimp.evaluate(null));
 
-      else if(leftSimp.equals(new IntegerOperand(1)))
+      else if(isConstant(leftSimp, 1))
         return rightSimp;
 
-      else if(rightSimp.equals(new IntegerOperand(1)))
+      else if(isConstant(rightSimp, 1))
         return leftSimp;
 
       else 
-        return new ProductExpression(leftSimp,rightSimp); 
+        return withChildrenIfChanged(leftSimp, rightSimp); 
    }   
 }
 
@@ -654,6 +1056,16 @@ class QuotientExpression extends OperatorExpression
       return "/";
    }
 
+   /**
+    * @param left the expression representing the left operand
+    * @param right the expression representing the right operand
+    * @return a new expression with the same operator as this one and the given operands
+    */
+   protected OperatorExpression withChildren(Expression left, Expression right)
+   {
+      return new QuotientExpression(left, right);
+   }
+
     /**
     * Evaluates the expression given assignments of values to variables.
     * @param assignments a HashMap from Strings (variable names) to Integers (values).
@@ -673,19 +1085,19 @@ class QuotientExpression extends OperatorExpression
       Expression leftSimp = left.simplify();
       Expression rightSimp = right.simplify();
 
-      if(leftSimp.equals(rightSimp))
-        return new IntegerOperand(1);
+      if(leftSimp.getClass() == rightSimp.getClass() && leftSimp.equals(rightSimp))//only the same kind of node can cancel out
+        return IntegerOperand.ONE;
 
-      else if(leftSimp.equals(new IntegerOperand(0)))
-        return new IntegerOperand(0);
+      else if(isConstant(leftSimp, 0))
+        return IntegerOperand.ZERO;
 
       else if(leftSimp instanceof IntegerOperand && rightSimp instanceof IntegerOperand) 
-        return new IntegerOperand(leftSimp.evaluate(null) / rightSimp.evaluate(null));
+        return IntegerOperand.valueOf(leftSimp.evaluate(null) / rightSimp.evaluate(null));
       
-      else if(rightSimp.equals(new IntegerOperand(1)))
+      else if(isConstant(rightSimp, 1))
         return leftSimp;
 
       else 
-        return new QuotientExpression(leftSimp,rightSimp); 
+        return withChildrenIfChanged(leftSimp, rightSimp); 
    }   
 }
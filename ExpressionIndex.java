@@ -0,0 +1,230 @@
+import java.util.*;
+import java.io.*;
+
+/**
+ * A class that groups expressions by a canonical fingerprint so that equivalent
+ * expressions can be found with a single hash lookup instead of pairwise comparison
+ */
+public class ExpressionIndex
+{
+   private HashMap<String, List<Expression>> groups;
+   private int size;
+
+   /**
+    * Create an empty index
+    */
+   public ExpressionIndex()
+   {
+      groups = new HashMap<String, List<Expression>>();
+      size = 0;
+   }
+
+   /**
+    * Computes the key shared by equivalent expressions: the expression is simplified
+    * and the operands of + and * are put in a fixed order. An expression that cannot be
+    * simplified, such as one dividing a constant by zero, is keyed by its unsimplified form.
+    * @param expr the Expression to fingerprint
+    * @return a String that is equal for expressions the index treats as equivalent
+    */
+   public static String fingerprint(Expression expr)
+   {
+      Expression simple;
+      try{
+        simple = expr.simplify();
+      }catch(ArithmeticException ae){//folding a constant division by zero
+        simple = expr;
+      }
+      return simple.toCanonical();
+   }
+
+   /**
+    * Adds an expression to the index, even if an equivalent one is already stored
+    * @param expr the Expression to add
+    */
+   public void add(Expression expr)
+   {
+      add(fingerprint(expr), expr);
+   }
+
+   /**
+    * Adds an expression to the index only if no equivalent expression is stored yet
+    * @param expr the Expression to add
+    * @return an equivalent Expression already in the index, or null if expr was added
+    */
+   public Expression insertIfAbsent(Expression expr)
+   {
+      String key = fingerprint(expr);
+      List<Expression> group = groups.get(key);
+      if(group != null)
+        return group.get(0);
+      add(key, expr);
+      return null;
+   }
+
+   /**
+    * @param expr the Expression to look up
+    * @return a List of every stored Expression equivalent to expr, in the order they were added
+    */
+   public List<Expression> findEquivalent(Expression expr)
+   {
+      List<Expression> group = groups.get(fingerprint(expr));
+      if(group == null)
+        return Collections.emptyList();
+      return Collections.unmodifiableList(group);
+   }
+
+   /**
+    * @param expr the Expression to look up
+    * @return true if an Expression equivalent to expr is stored
+    */
+   public boolean containsEquivalent(Expression expr)
+   {
+      return groups.containsKey(fingerprint(expr));
+   }
+
+   /**
+    * @return the number of expressions stored
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    * @return the number of distinct fingerprints stored
+    */
+   public int distinctCount()
+   {
+      return groups.size();
+   }
+
+   /**
+    * Writes the index to a file, one expression per line as its fingerprint and postfix notation separated by a tab.
+    * Backslashes, tabs and line breaks inside either field are escaped.
+    * @param filename the name of the output file
+    */
+   public void save(String filename) throws IOException
+   {
+      BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+      try{
+        for(Map.Entry<String, List<Expression>> entry : groups.entrySet()){
+          String key = escape(entry.getKey());
+          for(Expression expr : entry.getValue()){
+            bw.write(key);
+            bw.write("\t");
+            bw.write(escape(expr.toPostfix().trim()));
+            bw.write("\n");
+          }
+        }
+      }finally{
+        bw.close();
+      }
+   }
+
+   /**
+    * Reads an index written by save; the stored fingerprints are reused instead of simplifying every expression again
+    * @param filename the name of the input file
+    * @return a new ExpressionIndex holding the expressions in the file
+    */
+   public static ExpressionIndex load(String filename) throws IOException
+   {
+      ExpressionIndex index = new ExpressionIndex();
+      BufferedReader br = new BufferedReader(new FileReader(filename));
+      try{
+        String line;
+        int lineNumber = 0;
+        while((line = br.readLine()) != null){
+          lineNumber++;
+          int tab = line.indexOf('\t');//fields never contain a raw tab, so the first one separates them
+          if(tab < 0 || line.indexOf('\t', tab + 1) >= 0)
+            throw new IOException(filename + ": expected exactly one tab on line " + lineNumber);
+          String postfix = unescape(line.substring(tab + 1), filename, lineNumber);
+          Expression expr;
+          try{
+            expr = Expression.expressionFromPostfix(postfix.split(" "));
+          }catch(RuntimeException re){//too few operands for an operator
+            throw new IOException(filename + ": malformed postfix on line " + lineNumber, re);
+          }
+          if(expr == null || !expr.toPostfix().trim().equals(postfix))//leftover operands or stray spaces
+            throw new IOException(filename + ": malformed postfix on line " + lineNumber);
+          index.add(unescape(line.substring(0, tab), filename, lineNumber), expr);
+        }
+      }finally{
+        br.close();
+      }
+      return index;
+   }
+
+   /**
+    * Creates a helper method to escape a field for the file written by save
+    * @param field the String to escape
+    * @return field with backslashes, tabs and line breaks replaced by backslash sequences
+    */
+   private static String escape(String field)
+   {
+      StringBuilder sb = new StringBuilder(field.length());
+      for(int i = 0; i < field.length(); i++){
+        char c = field.charAt(i);
+        if(c == '\\')
+          sb.append("\\\\");
+        else if(c == '\t')
+          sb.append("\\t");
+        else if(c == '\n')
+          sb.append("\\n");
+        else if(c == '\r')
+          sb.append("\\r");
+        else
+          sb.append(c);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Creates a helper method to undo escape
+    * @param field the escaped String read from the file
+    * @param filename the name of the file, for error messages
+    * @param lineNumber the line field was read from, for error messages
+    * @return the original String
+    */
+   private static String unescape(String field, String filename, int lineNumber) throws IOException
+   {
+      StringBuilder sb = new StringBuilder(field.length());
+      for(int i = 0; i < field.length(); i++){
+        char c = field.charAt(i);
+        if(c != '\\'){
+          sb.append(c);
+          continue;
+        }
+        if(++i == field.length())
+          throw new IOException(filename + ": dangling escape on line " + lineNumber);
+        char next = field.charAt(i);
+        if(next == '\\')
+          sb.append('\\');
+        else if(next == 't')
+          sb.append('\t');
+        else if(next == 'n')
+          sb.append('\n');
+        else if(next == 'r')
+          sb.append('\r');
+        else
+          throw new IOException(filename + ": unknown escape \\" + next + " on line " + lineNumber);
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Creates a helper method to store an expression under an already computed fingerprint
+    * @param key the fingerprint of expr
+    * @param expr the Expression to store
+    */
+   private void add(String key, Expression expr)
+   {
+      List<Expression> group = groups.get(key);
+      if(group == null){
+        group = new ArrayList<Expression>(1);
+        groups.put(key, group);
+      }
+      group.add(expr);
+      size++;
+   }
+}
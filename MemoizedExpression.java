@@ -0,0 +1,193 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class that evaluates an expression and remembers the results of recent evaluations,
+ * keyed by the values assigned to the expression's own variables
+ */
+public class MemoizedExpression
+{
+   private static final int MAX_SEGMENTS = 16;
+
+   private final Expression expr;
+   private final String[] variables;//the expression's variables in sorted order; a key holds their values in the same order
+   private final Segment[] segments;//each key lives in the segment its hash selects, so threads only contend within a segment
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+
+   /**
+    * Create the evaluator
+    * @param expr the expression to evaluate
+    * @param capacity the largest number of results to remember; within each segment the least recently used one is dropped first
+    */
+   public MemoizedExpression(Expression expr, int capacity)
+   {
+      if(capacity <= 0)
+        throw new IllegalArgumentException("capacity must be positive: " + capacity);
+      this.expr = expr;
+      Set<String> vars = expr.getVariables();
+      this.variables = vars.toArray(new String[vars.size()]);
+      int count = Math.min(MAX_SEGMENTS, capacity);
+      this.segments = new Segment[count];
+      for(int i = 0; i < count; i++)//spread the capacity so the segments add up to exactly capacity
+        segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+   }
+
+   /**
+    * @return the expression this one evaluates
+    */
+   public Expression getExpression()
+   {
+      return expr;
+   }
+
+   /**
+    * Evaluates the expression, reusing the previous result if its variables had the same values.
+    * @param assignments a HashMap from Strings (variable names) to Integers (values).
+    * @return the result of evaluating the expression with the given variable assignments
+    */
+   public int evaluate(HashMap<String, Integer> assignments)
+   {
+      int[] values = new int[variables.length];
+      for(int i = 0; i < variables.length; i++)
+        values[i] = assignments.get(variables[i]);
+      Key key = new Key(values);
+      Segment segment = segments[(key.hash & 0x7fffffff) % segments.length];
+      Integer res;
+      synchronized(segment){
+        res = segment.get(key);
+      }
+      if(res != null){
+        hits.incrementAndGet();
+        return res;
+      }
+      misses.incrementAndGet();
+      int value = expr.evaluate(assignments);//evaluated outside the lock; two threads may both compute a missing result
+      synchronized(segment){
+        segment.put(key, value);
+      }
+      return value;
+   }
+
+   /**
+    * @return the number of evaluations answered from the cache
+    */
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return the number of evaluations that had to evaluate the expression
+    */
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @return the fraction of evaluations answered from the cache, or 0 if there have been none
+    */
+   public double getHitRate()
+   {
+      long h = hits.get();
+      long total = h + misses.get();
+      if(total == 0)
+        return 0;
+      return (double) h / total;
+   }
+
+   /**
+    * @return the number of results currently remembered
+    */
+   public int cacheSize()
+   {
+      int size = 0;
+      for(Segment segment : segments){
+        synchronized(segment){
+          size += segment.size();
+        }
+      }
+      return size;
+   }
+
+   /**
+    * Forgets every remembered result and resets the statistics
+    */
+   public void clearCache()
+   {
+      for(Segment segment : segments){
+        synchronized(segment){
+          segment.clear();
+        }
+      }
+      hits.set(0);
+      misses.set(0);
+   }
+
+   /**
+    * @return a String that represents the expression in infix notation
+    */
+   @Override
+   public String toString()
+   {
+      return expr.toString();
+   }
+
+   /**
+    * A class holding one share of the cache in least recently used order; callers lock it while using it
+    */
+   private static final class Segment extends LinkedHashMap<Key, Integer>
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final int capacity;
+
+      /**
+       * Create the segment
+       * @param capacity the largest number of results this segment remembers
+       */
+      Segment(int capacity)
+      {
+         super(16, 0.75f, true);
+         this.capacity = capacity;
+      }
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest)
+      {
+         return size() > capacity;
+      }
+   }
+
+   /**
+    * A class holding the values of the variables for one evaluation as primitives
+    */
+   private static final class Key
+   {
+      private final int[] values;
+      private final int hash;
+
+      /**
+       * Create the key
+       * @param values the values of the variables, in the order of the expression's sorted variables
+       */
+      Key(int[] values)
+      {
+         this.values = values;
+         this.hash = Arrays.hashCode(values);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hash;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         return obj instanceof Key && Arrays.equals(values, ((Key) obj).values);
+      }
+   }
+}